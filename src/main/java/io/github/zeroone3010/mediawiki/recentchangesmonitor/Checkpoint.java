@@ -0,0 +1,48 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import java.util.Objects;
+
+/**
+ * The highest Recent Change id and log id that have already been reported for a wiki.
+ */
+class Checkpoint {
+  static final Checkpoint NONE = new Checkpoint(-1L, -1L);
+
+  private final long recentChangeId;
+  private final long logId;
+
+  Checkpoint(final long recentChangeId, final long logId) {
+    this.recentChangeId = recentChangeId;
+    this.logId = logId;
+  }
+
+  long getRecentChangeId() {
+    return recentChangeId;
+  }
+
+  long getLogId() {
+    return logId;
+  }
+
+  @Override
+  public String toString() {
+    return "Checkpoint{" +
+        "recentChangeId=" + recentChangeId +
+        ", logId=" + logId +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    Checkpoint that = (Checkpoint) o;
+    return getRecentChangeId() == that.getRecentChangeId() &&
+        getLogId() == that.getLogId();
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getRecentChangeId(), getLogId());
+  }
+}
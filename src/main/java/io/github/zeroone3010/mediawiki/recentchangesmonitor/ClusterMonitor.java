@@ -0,0 +1,298 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Monitors a set of wikis together with other nodes sharing the same {@link DirectoryLeaseStore}.
+ * <p>
+ * Every wiki is polled by the one node holding its lease. A lease that is not renewed expires, after which it is
+ * taken over by the least loaded live node, where the load of a node is the sum of the loads of the wikis it holds:
+ * a fixed cost per poll plus the edit rate. A node whose load clearly exceeds its fair share releases wikis to even
+ * things out.
+ * <p>
+ * The checkpoint of a wiki is stored in its lease right after each report, so a node taking over the wiki resumes
+ * from the last stored checkpoint. The owner only reports while at least the report margin of its lease remains,
+ * and others only take over once the lease has been expired for the takeover grace period, which is longer than
+ * the margin; overlapping runs of the same node are prevented by a lock. Reports are thus delivered at least once:
+ * a node dying between reporting and storing the checkpoint, a round stalling for longer than the margin and
+ * grace period together, or clocks drifting apart by more than that, may lead to the same edits being reported
+ * again by the next owner.
+ */
+class ClusterMonitor {
+  static final long DEFAULT_LEASE_DURATION_MILLIS = 5 * 60 * 1000L;
+  static final long DEFAULT_REPORT_MARGIN_MILLIS = 60 * 1000L;
+  static final long DEFAULT_TAKEOVER_GRACE_MILLIS = 2 * 60 * 1000L;
+
+  /**
+   * How far above the fair share the load of a node may grow before it starts releasing wikis.
+   */
+  private static final double REBALANCE_THRESHOLD = 1.25;
+
+  /**
+   * The weight of the latest observation in the moving average of the edit rate of a wiki.
+   */
+  private static final double EDIT_RATE_SMOOTHING = 0.5;
+
+  /**
+   * The load of polling a wiki once, in the same unit as its edit rate, so that quiet wikis spread out as well.
+   */
+  private static final double POLL_COST = 1.0;
+
+  private final DirectoryLeaseStore leaseStore;
+  private final String node;
+  private final Map<String, String> apiUrlsByWiki = new LinkedHashMap<>();
+  private final long leaseDurationMillis;
+  private final long reportMarginMillis;
+  private final long takeoverGraceMillis;
+  private final BiFunction<String, Checkpoint, Poll> poller;
+  private final Consumer<String> reporter;
+
+  /**
+   * @param leaseStore The lease store shared by all the nodes.
+   * @param node       The id of this node, unique within the cluster.
+   * @param apiUrls    The URLs of the api.php services of the wikis; the same for every node, and each on a host
+   *                   of its own.
+   */
+  ClusterMonitor(final DirectoryLeaseStore leaseStore, final String node, final List<String> apiUrls) {
+    this(leaseStore, node, apiUrls, DEFAULT_LEASE_DURATION_MILLIS, DEFAULT_REPORT_MARGIN_MILLIS,
+        DEFAULT_TAKEOVER_GRACE_MILLIS, (apiUrl, lastSeen) -> new RecentChangesMonitor(apiUrl).poll(lastSeen),
+        System.out::println);
+  }
+
+  /**
+   * @param leaseDurationMillis How long a lease is held after each renewal.
+   * @param reportMarginMillis  How much of the lease must remain for a report to be delivered.
+   * @param takeoverGraceMillis How long another node waits after a lease has expired before taking it over;
+   *                            must be longer than the report margin.
+   * @param poller              Polls the wiki with the given api.php URL once, given its checkpoint.
+   * @param reporter            Delivers the report of a poll.
+   */
+  ClusterMonitor(final DirectoryLeaseStore leaseStore, final String node, final List<String> apiUrls,
+                 final long leaseDurationMillis, final long reportMarginMillis, final long takeoverGraceMillis,
+                 final BiFunction<String, Checkpoint, Poll> poller, final Consumer<String> reporter) {
+    if (reportMarginMillis >= leaseDurationMillis || takeoverGraceMillis <= reportMarginMillis) {
+      throw new IllegalArgumentException("The report margin must be shorter than both the lease duration and the "
+          + "takeover grace period.");
+    }
+    this.leaseStore = leaseStore;
+    this.node = node;
+    apiUrls.forEach(apiUrl -> {
+      final String previous = apiUrlsByWiki.put(RecentChangesMonitor.getWikiHostName(apiUrl), apiUrl);
+      if (previous != null) {
+        throw new IllegalArgumentException("Leases are kept per host name, so " + previous + " and " + apiUrl
+            + " cannot be monitored together.");
+      }
+    });
+    this.leaseDurationMillis = leaseDurationMillis;
+    this.reportMarginMillis = reportMarginMillis;
+    this.takeoverGraceMillis = takeoverGraceMillis;
+    this.poller = poller;
+    this.reporter = reporter;
+  }
+
+  /**
+   * Renews, takes over or releases leases as needed, then polls the wikis this node holds and prints their
+   * reports. Meant to be run periodically, and clearly more often than the lease duration. Does nothing if a
+   * previous run of this node is still in progress.
+   */
+  void runOnce() {
+    try (final FileChannel lock = leaseStore.tryLockNode(node)) {
+      if (lock == null) {
+        System.err.println("A previous run of " + node + " is still in progress; skipping this one.");
+        return;
+      }
+      runLocked();
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void runLocked() {
+    final long now = System.currentTimeMillis();
+    leaseStore.heartbeat(node, now);
+    final Set<String> liveNodes = leaseStore.findLiveNodes(now - leaseDurationMillis);
+    liveNodes.add(node);
+
+    final Map<String, Lease> leases = new HashMap<>();
+    apiUrlsByWiki.keySet().forEach(wiki -> leaseStore.read(wiki).ifPresent(lease -> leases.put(wiki, lease)));
+
+    final Map<String, Double> loadPerNode = new HashMap<>();
+    liveNodes.forEach(liveNode -> loadPerNode.put(liveNode, 0.0));
+    // Wikis that have never been leased only count for the cost of polling them.
+    double totalLoad = (apiUrlsByWiki.size() - leases.size()) * POLL_COST;
+    for (final Lease lease : leases.values()) {
+      totalLoad += load(lease);
+      if (!lease.isExpired(now) && liveNodes.contains(lease.getOwner())) {
+        loadPerNode.merge(lease.getOwner(), load(lease), Double::sum);
+      }
+    }
+    final double fairShare = totalLoad / liveNodes.size();
+
+    final Set<String> released = releaseExcessLoad(leases, loadPerNode, fairShare, now);
+
+    for (final String wiki : apiUrlsByWiki.keySet()) {
+      if (released.contains(wiki)) {
+        continue;
+      }
+      // Polling the previous wikis may have taken a while, so the lease is looked at afresh.
+      final Lease current = leaseStore.read(wiki).orElse(null);
+      final long decidedAt = System.currentTimeMillis();
+      if (!mayHold(current, loadPerNode, decidedAt)) {
+        continue;
+      }
+      final Lease renewed = current == null
+          ? Lease.first(wiki, node, decidedAt + leaseDurationMillis, RecentChangesMonitor.findStoredCheckpoint(wiki))
+          : current.renew(node, decidedAt + leaseDurationMillis);
+      if (!leaseStore.replace(current, renewed)) {
+        continue;
+      }
+      if (current == null || !current.isHeldBy(node, decidedAt)) {
+        loadPerNode.merge(node, load(renewed), Double::sum);
+      }
+      try {
+        poll(renewed);
+      } catch (final Exception e) {
+        System.err.println(e);
+      }
+    }
+  }
+
+  /**
+   * A node keeps the leases it holds and takes over free or expired ones when it is the least loaded live node.
+   * The lease of another node may only be taken over once the takeover grace period has passed since it expired,
+   * and it is up for grabs by anyone after a further lease duration, in case the load figures are stale.
+   */
+  private boolean mayHold(final Lease current, final Map<String, Double> loadPerNode, final long now) {
+    if (current == null) {
+      return isLeastLoaded(loadPerNode);
+    }
+    if (current.isHeldBy(node, now)) {
+      return true;
+    }
+    if (!current.isExpired(now)) {
+      return false;
+    }
+    final long expiredFor = now - current.getExpiresAt();
+    final long grace = node.equals(current.getOwner()) ? 0L : takeoverGraceMillis;
+    if (expiredFor < grace) {
+      return false;
+    }
+    return isLeastLoaded(loadPerNode) || expiredFor >= grace + leaseDurationMillis;
+  }
+
+  private boolean isLeastLoaded(final Map<String, Double> loadPerNode) {
+    final double ownLoad = loadPerNode.get(node);
+    return loadPerNode.entrySet().stream().noneMatch(entry -> entry.getValue() < ownLoad
+        || (entry.getValue() == ownLoad && entry.getKey().compareTo(node) < 0));
+  }
+
+  /**
+   * Releases leases while the load of this node clearly exceeds its fair share, each time the busiest wiki whose
+   * load fits within the excess, so that the releases cannot leave this node below its fair share. The last lease
+   * of a node is never released.
+   *
+   * @return The wikis whose leases were released.
+   */
+  private Set<String> releaseExcessLoad(final Map<String, Lease> leases, final Map<String, Double> loadPerNode,
+                                        final double fairShare, final long now) {
+    final Set<String> released = new HashSet<>();
+    while (loadPerNode.get(node) > fairShare * REBALANCE_THRESHOLD) {
+      final double excess = loadPerNode.get(node) - fairShare;
+      Lease candidate = null;
+      int held = 0;
+      for (final Lease lease : leases.values()) {
+        if (lease.isHeldBy(node, now) && !released.contains(lease.getWiki())) {
+          held++;
+          if (load(lease) <= excess && (candidate == null || load(lease) > load(candidate))) {
+            candidate = lease;
+          }
+        }
+      }
+      if (candidate == null || held < 2
+          || !leaseStore.replace(candidate, candidate.release(now - takeoverGraceMillis))) {
+        break;
+      }
+      released.add(candidate.getWiki());
+      loadPerNode.merge(node, -load(candidate), Double::sum);
+      System.err.println("Released " + candidate.getWiki() + " to rebalance the load of " + node);
+    }
+    return released;
+  }
+
+  private static double load(final Lease lease) {
+    return POLL_COST + lease.getEditsPerMinute();
+  }
+
+  private void poll(final Lease lease) {
+    final Poll poll = poller.apply(apiUrlsByWiki.get(lease.getWiki()), lease.getCheckpoint());
+
+    final long now = System.currentTimeMillis();
+    if (now > lease.getExpiresAt() - reportMarginMillis) {
+      System.err.println("Too little of the lease of " + lease.getWiki() + " remained after polling it; "
+          + "not reporting.");
+      return;
+    }
+    reporter.accept(poll.getReport());
+
+    final long latestRecentChangeId = poll.getRecentChanges().stream()
+        .mapToLong(RecentChange::getRecentChangeId)
+        .max()
+        .orElse(lease.getLatestRecentChangeId());
+    final Lease polled = lease.polled(poll.getCheckpoint(), now, latestRecentChangeId,
+        updateEditRate(lease, poll, latestRecentChangeId, now));
+    if (!leaseStore.replace(lease, polled)) {
+      System.err.println("Lost the lease of " + lease.getWiki() + " before storing its checkpoint.");
+    }
+  }
+
+  /**
+   * Estimates how many changes were made since the previous poll from how far the Recent Change ids have
+   * advanced, and folds the resulting rate into the moving average. Unlike counting the fetched changes, this is
+   * not capped by the number of changes fetched per poll. On the first poll of a wiki, the spread of the ids of
+   * the fetched changes is used instead, over the time since the oldest of them; a wiki that has had more changes
+   * than are fetched at once is thus measured over a shorter period, but not underestimated.
+   */
+  private static double updateEditRate(final Lease lease, final Poll poll, final long latestRecentChangeId,
+                                       final long now) {
+    final long edits;
+    final long since;
+    if (lease.getPolledAt() > 0L && lease.getLatestRecentChangeId() >= 0L) {
+      edits = Math.max(0L, latestRecentChangeId - lease.getLatestRecentChangeId());
+      since = lease.getPolledAt();
+    } else {
+      final List<RecentChange> recentChanges = poll.getRecentChanges();
+      if (recentChanges.isEmpty()) {
+        return lease.getEditsPerMinute();
+      }
+      edits = latestRecentChangeId - recentChanges.stream()
+          .mapToLong(RecentChange::getRecentChangeId)
+          .min()
+          .getAsLong() + 1;
+      since = recentChanges.stream()
+          .map(RecentChange::getTimestamp)
+          .filter(Objects::nonNull)
+          .mapToLong(Instant::toEpochMilli)
+          .min()
+          .orElse(now);
+    }
+    if (now <= since) {
+      return lease.getEditsPerMinute();
+    }
+    final double observed = edits * 60_000.0 / (now - since);
+    if (lease.getPolledAt() <= 0L) {
+      return observed;
+    }
+    return EDIT_RATE_SMOOTHING * observed + (1 - EDIT_RATE_SMOOTHING) * lease.getEditsPerMinute();
+  }
+}
@@ -0,0 +1,318 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps the leases and node heartbeats of a cluster in a directory shared by all of its nodes.
+ * <p>
+ * Each generation of a lease is a file of its own, named {@code <wiki>.lease.<generation>}. A new generation is
+ * written to a temporary file first and then hard linked to its final name, which fails if the name is already
+ * taken. Of two nodes racing for the same generation exactly one wins, and a node working from an outdated copy of
+ * the lease sees that a later generation exists and does not try.
+ * <p>
+ * Generations that are both well behind the latest one and older than the retention period are cleaned up, oldest
+ * first, which frees their names again. Only a node stalling for the whole retention period between checking for
+ * later generations and creating the link could then recreate a cleaned-up generation, and even that is caught:
+ * a replacement only counts if the generation it was based on still exists afterwards, and because of the cleanup
+ * order, a generation is never gone while the one before it remains. Likewise, a first generation only counts if
+ * no generations have been cleaned up. Together these make {@link #replace(Lease, Lease)} an atomic
+ * compare-and-set. The directory must be on a file system that supports hard links.
+ */
+class DirectoryLeaseStore {
+  private static final String LEASE_INFIX = ".lease.";
+  private static final String NODES_DIRECTORY = "nodes";
+
+  static final long DEFAULT_RETENTION_MILLIS = 10 * 60 * 1000L;
+
+  /**
+   * How many of the latest generations of a lease are always kept.
+   */
+  private static final int KEPT_GENERATIONS = 10;
+
+  private final Path directory;
+  private final long retentionMillis;
+
+  /**
+   * @param directory The shared directory. It is created if it does not exist.
+   */
+  DirectoryLeaseStore(final Path directory) {
+    this(directory, DEFAULT_RETENTION_MILLIS);
+  }
+
+  /**
+   * @param directory       The shared directory. It is created if it does not exist.
+   * @param retentionMillis How long a generation of a lease is kept at least, even after later ones.
+   */
+  DirectoryLeaseStore(final Path directory, final long retentionMillis) {
+    this.directory = directory;
+    this.retentionMillis = retentionMillis;
+    try {
+      Files.createDirectories(directory.resolve(NODES_DIRECTORY));
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @param wiki The host name of the wiki.
+   * @return The latest generation of the lease of the given wiki, or an empty Optional if it has never been leased.
+   */
+  Optional<Lease> read(final String wiki) {
+    while (true) {
+      final long generation = findLatestGeneration(wiki);
+      if (generation == 0L) {
+        return Optional.empty();
+      }
+      try {
+        return Optional.of(readLease(wiki, generation));
+      } catch (final NoSuchFileException e) {
+        // A newer generation was written and this one cleaned up in between; look again.
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Stores the next generation of a lease, unless some other node has already done so.
+   *
+   * @param current The generation the change is based on, or null if the wiki has never been leased.
+   * @param next    The new generation; its generation number must be one higher than that of {@code current}.
+   * @return true if {@code next} is now the latest generation, false if another node got there first.
+   */
+  boolean replace(final Lease current, final Lease next) {
+    final long expectedGeneration = current == null ? 1L : current.getGeneration() + 1;
+    if (next.getGeneration() != expectedGeneration) {
+      throw new IllegalArgumentException("Expected generation " + expectedGeneration + " but got " + next);
+    }
+    final Path target = leaseFile(next.getWiki(), next.getGeneration());
+    Path temporary = null;
+    try {
+      temporary = Files.createTempFile(directory, "." + target.getFileName(), ".tmp");
+      writeLease(temporary, next);
+      if (findLatestGeneration(next.getWiki()) != expectedGeneration - 1) {
+        return false;
+      }
+      link(target, temporary);
+    } catch (final FileAlreadyExistsException e) {
+      return false;
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      if (temporary != null) {
+        deleteQuietly(temporary);
+      }
+    }
+    final boolean outdated = current == null
+        ? hasBeenCleanedUp(next.getWiki())
+        : !Files.exists(leaseFile(current.getWiki(), current.getGeneration()));
+    if (outdated) {
+      // The lease had already moved past the given generation, which has been cleaned up since.
+      deleteQuietly(target);
+      return false;
+    }
+    cleanUp(next.getWiki());
+    return true;
+  }
+
+  /**
+   * Records that the given node is alive.
+   *
+   * @param node The id of the node.
+   * @param now  The current epoch millisecond.
+   */
+  void heartbeat(final String node, final long now) {
+    final Path nodes = directory.resolve(NODES_DIRECTORY);
+    final Path temporary = nodes.resolve("." + node + ".tmp");
+    try {
+      Files.write(temporary, Collections.singleton(String.valueOf(now)));
+      Files.move(temporary, nodes.resolve(node), ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Makes sure that only one run of the given node is in progress at a time, even if runs started by cron overlap.
+   *
+   * @param node The id of the node.
+   * @return A channel holding an exclusive lock, which is released by closing the channel, or null if another run
+   * of the node holds the lock.
+   */
+  FileChannel tryLockNode(final String node) {
+    try {
+      final FileChannel channel = FileChannel.open(directory.resolve(NODES_DIRECTORY).resolve("." + node + ".lock"),
+          CREATE, WRITE);
+      try {
+        if (channel.tryLock() != null) {
+          return channel;
+        }
+      } catch (final OverlappingFileLockException e) {
+        // Held by another run within this JVM.
+      }
+      channel.close();
+      return null;
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @param since An epoch millisecond.
+   * @return The ids of the nodes that have sent a heartbeat at or after the given time.
+   */
+  Set<String> findLiveNodes(final long since) {
+    final Set<String> result = new HashSet<>();
+    try (final DirectoryStream<Path> nodes = Files.newDirectoryStream(directory.resolve(NODES_DIRECTORY))) {
+      for (final Path node : nodes) {
+        final String name = node.getFileName().toString();
+        if (name.startsWith(".")) {
+          continue;
+        }
+        try {
+          if (Long.parseLong(Files.readAllLines(node).get(0).trim()) >= since) {
+            result.add(name);
+          }
+        } catch (final Exception e) {
+          System.err.println(e);
+        }
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    return result;
+  }
+
+  /**
+   * Creates the final name of a new generation as a hard link to its temporary file. Tests override this to stall
+   * a replacement between its checks.
+   *
+   * @throws FileAlreadyExistsException If the generation already exists.
+   */
+  void link(final Path target, final Path temporary) throws IOException {
+    Files.createLink(target, temporary);
+  }
+
+  private long findLatestGeneration(final String wiki) {
+    final List<Long> generations = findGenerations(wiki);
+    return generations.isEmpty() ? 0L : generations.get(generations.size() - 1);
+  }
+
+  /**
+   * @return The generations of the lease of the given wiki that have files, in ascending order.
+   */
+  private List<Long> findGenerations(final String wiki) {
+    final String prefix = wiki + LEASE_INFIX;
+    final List<Long> generations = new ArrayList<>();
+    try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (final Path file : files) {
+        final String name = file.getFileName().toString();
+        if (name.startsWith(prefix)) {
+          try {
+            generations.add(Long.parseLong(name.substring(prefix.length())));
+          } catch (final NumberFormatException e) {
+            // Not a lease file of this wiki.
+          }
+        }
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    Collections.sort(generations);
+    return generations;
+  }
+
+  /**
+   * @return true if some generations of the lease of the given wiki have already been cleaned up.
+   */
+  private boolean hasBeenCleanedUp(final String wiki) {
+    final List<Long> generations = findGenerations(wiki);
+    return !generations.isEmpty() && generations.get(generations.size() - 1) > generations.size();
+  }
+
+  /**
+   * Deletes the generations of the lease of the given wiki that are past the retention period, apart from the
+   * latest ones, oldest first. Generations already deleted by another node are skipped, but any other failure
+   * stops the cleanup so that the order holds.
+   */
+  private void cleanUp(final String wiki) {
+    final long cutoff = System.currentTimeMillis() - retentionMillis;
+    final List<Long> generations = findGenerations(wiki);
+    for (int i = 0; i < generations.size() - KEPT_GENERATIONS; i++) {
+      final Path file = leaseFile(wiki, generations.get(i));
+      try {
+        if (Files.getLastModifiedTime(file).toMillis() > cutoff) {
+          return;
+        }
+        Files.delete(file);
+      } catch (final NoSuchFileException e) {
+        // Already cleaned up by another node.
+      } catch (final IOException e) {
+        System.err.println(e);
+        return;
+      }
+    }
+  }
+
+  private Path leaseFile(final String wiki, final long generation) {
+    return directory.resolve(wiki + LEASE_INFIX + generation);
+  }
+
+  private Lease readLease(final String wiki, final long generation) throws IOException {
+    final Properties properties = new Properties();
+    try (final Reader reader = Files.newBufferedReader(leaseFile(wiki, generation), StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    return new Lease(wiki, generation,
+        properties.getProperty("owner"),
+        Long.parseLong(properties.getProperty("expiresAt")),
+        new Checkpoint(Long.parseLong(properties.getProperty("rcId")), Long.parseLong(properties.getProperty("logId"))),
+        Long.parseLong(properties.getProperty("polledAt")),
+        Long.parseLong(properties.getProperty("latestRcId", "-1")),
+        Double.parseDouble(properties.getProperty("editsPerMinute")));
+  }
+
+  private static void writeLease(final Path file, final Lease lease) throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty("owner", lease.getOwner());
+    properties.setProperty("expiresAt", String.valueOf(lease.getExpiresAt()));
+    properties.setProperty("rcId", String.valueOf(lease.getCheckpoint().getRecentChangeId()));
+    properties.setProperty("logId", String.valueOf(lease.getCheckpoint().getLogId()));
+    properties.setProperty("polledAt", String.valueOf(lease.getPolledAt()));
+    properties.setProperty("latestRcId", String.valueOf(lease.getLatestRecentChangeId()));
+    properties.setProperty("editsPerMinute", String.valueOf(lease.getEditsPerMinute()));
+    try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      properties.store(writer, null);
+    }
+  }
+
+  private static void deleteQuietly(final Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (final IOException e) {
+      System.err.println(e);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import java.util.Objects;
+
+/**
+ * A time-limited claim of one cluster node on monitoring one wiki. The lease carries the checkpoint of the wiki,
+ * so whoever holds the lease next resumes from the last checkpoint the previous owner stored, and the observed
+ * edit rate, which is what the load of the cluster is balanced by.
+ * <p>
+ * Every change to a lease produces a new generation; see {@link DirectoryLeaseStore#replace(Lease, Lease)}.
+ */
+class Lease {
+  private final String wiki;
+  private final long generation;
+  private final String owner;
+  private final long expiresAt;
+  private final Checkpoint checkpoint;
+  private final long polledAt;
+  private final long latestRecentChangeId;
+  private final double editsPerMinute;
+
+  /**
+   * @param wiki                 The host name of the wiki.
+   * @param generation           The version of this lease, starting from 1.
+   * @param owner                The id of the node holding the lease.
+   * @param expiresAt            The epoch millisecond after which the lease may be taken over.
+   * @param checkpoint           The last reported changes of the wiki.
+   * @param polledAt             The epoch millisecond of the last poll, or 0 if the wiki has not been polled yet.
+   * @param latestRecentChangeId The highest Recent Change id seen in the last poll, reported or not, or -1.
+   * @param editsPerMinute       The observed edit rate of the wiki.
+   */
+  Lease(final String wiki, final long generation, final String owner, final long expiresAt,
+        final Checkpoint checkpoint, final long polledAt, final long latestRecentChangeId,
+        final double editsPerMinute) {
+    this.wiki = wiki;
+    this.generation = generation;
+    this.owner = owner;
+    this.expiresAt = expiresAt;
+    this.checkpoint = checkpoint;
+    this.polledAt = polledAt;
+    this.latestRecentChangeId = latestRecentChangeId;
+    this.editsPerMinute = editsPerMinute;
+  }
+
+  /**
+   * @return A lease for a wiki that has never been leased before.
+   */
+  static Lease first(final String wiki, final String owner, final long expiresAt) {
+    return first(wiki, owner, expiresAt, Checkpoint.NONE);
+  }
+
+  /**
+   * @param checkpoint Where monitoring the wiki left off before it was leased, such as in single-wiki mode.
+   * @return A lease for a wiki that has never been leased before.
+   */
+  static Lease first(final String wiki, final String owner, final long expiresAt, final Checkpoint checkpoint) {
+    return new Lease(wiki, 1L, owner, expiresAt, checkpoint, 0L, -1L, 0.0);
+  }
+
+  String getWiki() {
+    return wiki;
+  }
+
+  long getGeneration() {
+    return generation;
+  }
+
+  String getOwner() {
+    return owner;
+  }
+
+  long getExpiresAt() {
+    return expiresAt;
+  }
+
+  Checkpoint getCheckpoint() {
+    return checkpoint;
+  }
+
+  long getPolledAt() {
+    return polledAt;
+  }
+
+  long getLatestRecentChangeId() {
+    return latestRecentChangeId;
+  }
+
+  double getEditsPerMinute() {
+    return editsPerMinute;
+  }
+
+  boolean isExpired(final long now) {
+    return now >= expiresAt;
+  }
+
+  boolean isHeldBy(final String node, final long now) {
+    return owner.equals(node) && !isExpired(now);
+  }
+
+  /**
+   * @return The next generation of this lease, held by the given node until the given time.
+   */
+  Lease renew(final String node, final long until) {
+    return new Lease(wiki, generation + 1, node, until, checkpoint, polledAt, latestRecentChangeId, editsPerMinute);
+  }
+
+  /**
+   * @param expiredAt When the released lease counts as having expired; backdated by the takeover grace period,
+   *                  another node may take it over at once.
+   * @return The next generation of this lease, already expired.
+   */
+  Lease release(final long expiredAt) {
+    return new Lease(wiki, generation + 1, owner, expiredAt, checkpoint, polledAt, latestRecentChangeId,
+        editsPerMinute);
+  }
+
+  /**
+   * @return The next generation of this lease, recording the outcome of a poll.
+   */
+  Lease polled(final Checkpoint newCheckpoint, final long now, final long newLatestRecentChangeId,
+              final double newEditsPerMinute) {
+    return new Lease(wiki, generation + 1, owner, expiresAt, newCheckpoint, now, newLatestRecentChangeId,
+        newEditsPerMinute);
+  }
+
+  @Override
+  public String toString() {
+    return "Lease{" +
+        "wiki='" + wiki + '\'' +
+        ", generation=" + generation +
+        ", owner='" + owner + '\'' +
+        ", expiresAt=" + expiresAt +
+        ", checkpoint=" + checkpoint +
+        ", polledAt=" + polledAt +
+        ", latestRecentChangeId=" + latestRecentChangeId +
+        ", editsPerMinute=" + editsPerMinute +
+        '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    Lease lease = (Lease) o;
+    return getGeneration() == lease.getGeneration() &&
+        getExpiresAt() == lease.getExpiresAt() &&
+        getPolledAt() == lease.getPolledAt() &&
+        getLatestRecentChangeId() == lease.getLatestRecentChangeId() &&
+        Double.compare(lease.getEditsPerMinute(), getEditsPerMinute()) == 0 &&
+        Objects.equals(getWiki(), lease.getWiki()) &&
+        Objects.equals(getOwner(), lease.getOwner()) &&
+        Objects.equals(getCheckpoint(), lease.getCheckpoint());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getWiki(), getGeneration(), getOwner(), getExpiresAt(), getCheckpoint(), getPolledAt(),
+        getLatestRecentChangeId(), getEditsPerMinute());
+  }
+}
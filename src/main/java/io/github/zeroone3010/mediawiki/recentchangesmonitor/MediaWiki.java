@@ -1,9 +1,5 @@
 package io.github.zeroone3010.mediawiki.recentchangesmonitor;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -12,12 +8,10 @@ import java.util.Map;
 
 class MediaWiki {
 
-  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final QueryResponseReader reader = new QueryResponseReader();
   private final String apiUrl;
 
   public MediaWiki(final String apiUrl) {
-    this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-    this.objectMapper.registerModule(new JavaTimeModule());
     this.apiUrl = apiUrl;
   }
 
@@ -31,7 +25,7 @@ class MediaWiki {
           "&rclimit=100" +
           "&format=json" +
           "&rcprop=user|userid|comment|title|ids|sizes|flags|timestamp|loginfo");
-      return objectMapper.readValue(recentChangesUrl, QueryResponse.class).getQuery().getRecentChanges();
+      return reader.read(recentChangesUrl).getQuery().getRecentChanges();
     } catch (final Exception e) {
       throw new RuntimeException(e);
     }
@@ -56,7 +50,7 @@ class MediaWiki {
           "&rvprop=ids|timestamp|user|comment|content" +
           "&rvdir=newer");
 
-      final Map<Long, Page> pages = objectMapper.readValue(revisionsUrl, QueryResponse.class).getQuery().getPages();
+      final Map<Long, Page> pages = reader.read(revisionsUrl).getQuery().getPages();
       final List<Revision> revisions = pages.get(edit.getPageId()).getRevisions();
 
       assert revisions.size() == 2 : "Something is not right, there should be two revisions.";
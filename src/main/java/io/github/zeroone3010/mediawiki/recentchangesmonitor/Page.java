@@ -1,8 +1,5 @@
 package io.github.zeroone3010.mediawiki.recentchangesmonitor;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
-
 import java.util.List;
 import java.util.Objects;
 
@@ -12,11 +9,10 @@ public class Page {
   private final String title;
   private final List<Revision> revisions;
 
-  @JsonCreator
-  public Page(@JsonProperty("pageid") long id,
-              @JsonProperty("ns") int namespace,
-              @JsonProperty("title") String title,
-              @JsonProperty("revisions") List<Revision> revisions) {
+  public Page(long id,
+              int namespace,
+              String title,
+              List<Revision> revisions) {
     this.id = id;
     this.namespace = namespace;
     this.title = title;
@@ -0,0 +1,39 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import java.util.List;
+
+/**
+ * The outcome of polling the Recent Changes list of a wiki once.
+ */
+class Poll {
+  private final List<RecentChange> recentChanges;
+  private final String report;
+  private final Checkpoint checkpoint;
+
+  Poll(final List<RecentChange> recentChanges, final String report, final Checkpoint checkpoint) {
+    this.recentChanges = recentChanges;
+    this.report = report;
+    this.checkpoint = checkpoint;
+  }
+
+  /**
+   * @return All the Recent Changes that were fetched, whether reported or not.
+   */
+  List<RecentChange> getRecentChanges() {
+    return recentChanges;
+  }
+
+  /**
+   * @return A human-readable String of the edits by new and anonymous users that had not been reported before.
+   */
+  String getReport() {
+    return report;
+  }
+
+  /**
+   * @return The checkpoint to store once the report has been delivered.
+   */
+  Checkpoint getCheckpoint() {
+    return checkpoint;
+  }
+}
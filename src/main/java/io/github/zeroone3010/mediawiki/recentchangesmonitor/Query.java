@@ -1,8 +1,5 @@
 package io.github.zeroone3010.mediawiki.recentchangesmonitor;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
-
 import java.util.List;
 import java.util.Map;
 
@@ -10,9 +7,8 @@ class Query {
   private final List<RecentChange> recentChanges;
   private final Map<Long, Page> pages;
 
-  @JsonCreator
-  public Query(@JsonProperty("recentchanges") List<RecentChange> recentChanges,
-               @JsonProperty("pages") Map<Long, Page> pages) {
+  public Query(List<RecentChange> recentChanges,
+               Map<Long, Page> pages) {
     this.pages = pages;
     this.recentChanges = recentChanges;
   }
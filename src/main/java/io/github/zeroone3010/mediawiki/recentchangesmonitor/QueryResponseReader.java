@@ -0,0 +1,229 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the JSON responses of the MediaWiki query API with a streaming parser. Binding the model classes by hand
+ * instead of through a reflective ObjectMapper keeps the startup cost of a single cron-launched poll low.
+ * Unknown properties are skipped.
+ */
+class QueryResponseReader {
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  QueryResponse read(final URL url) throws IOException {
+    try (final JsonParser parser = jsonFactory.createParser(url)) {
+      Query query = null;
+      expect(parser.nextToken(), JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        final String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("query".equals(field)) {
+          query = readQuery(parser);
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return new QueryResponse(query);
+    }
+  }
+
+  private static Query readQuery(final JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT);
+    List<RecentChange> recentChanges = null;
+    Map<Long, Page> pages = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("recentchanges".equals(field)) {
+        recentChanges = new ArrayList<>();
+        expect(parser.currentToken(), JsonToken.START_ARRAY);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          recentChanges.add(readRecentChange(parser));
+        }
+      } else if ("pages".equals(field)) {
+        pages = new HashMap<>();
+        expect(parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          final long pageId = Long.parseLong(parser.getCurrentName());
+          parser.nextToken();
+          pages.put(pageId, readPage(parser));
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return new Query(recentChanges, pages);
+  }
+
+  private static RecentChange readRecentChange(final JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT);
+    long recentChangeId = 0L;
+    RecentChange.ChangeType type = null;
+    int namespace = 0;
+    String title = null;
+    long pageId = 0L;
+    long revisionId = 0L;
+    long oldRevisionId = 0L;
+    String user = null;
+    long userId = 0L;
+    long oldLength = 0L;
+    long newLength = 0L;
+    Instant timestamp = null;
+    String comment = null;
+    Long logId = null;
+    String logType = null;
+    String logAction = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "rcid":
+          recentChangeId = parser.getValueAsLong();
+          break;
+        case "type":
+          type = RecentChange.ChangeType.fromValue(parser.getText());
+          break;
+        case "ns":
+          namespace = parser.getValueAsInt();
+          break;
+        case "title":
+          title = parser.getValueAsString();
+          break;
+        case "pageid":
+          pageId = parser.getValueAsLong();
+          break;
+        case "revid":
+          revisionId = parser.getValueAsLong();
+          break;
+        case "old_revid":
+          oldRevisionId = parser.getValueAsLong();
+          break;
+        case "user":
+          user = parser.getValueAsString();
+          break;
+        case "userid":
+          userId = parser.getValueAsLong();
+          break;
+        case "oldlen":
+          oldLength = parser.getValueAsLong();
+          break;
+        case "newlen":
+          newLength = parser.getValueAsLong();
+          break;
+        case "timestamp":
+          timestamp = readInstant(parser);
+          break;
+        case "comment":
+          comment = parser.getValueAsString();
+          break;
+        case "logid":
+          logId = parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsLong();
+          break;
+        case "logtype":
+          logType = parser.getValueAsString();
+          break;
+        case "logaction":
+          logAction = parser.getValueAsString();
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new RecentChange(recentChangeId, type, namespace, title, pageId, revisionId, oldRevisionId, user, userId,
+        oldLength, newLength, timestamp, comment, logId, logType, logAction);
+  }
+
+  private static Page readPage(final JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT);
+    long id = 0L;
+    int namespace = 0;
+    String title = null;
+    List<Revision> revisions = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "pageid":
+          id = parser.getValueAsLong();
+          break;
+        case "ns":
+          namespace = parser.getValueAsInt();
+          break;
+        case "title":
+          title = parser.getValueAsString();
+          break;
+        case "revisions":
+          revisions = new ArrayList<>();
+          expect(parser.currentToken(), JsonToken.START_ARRAY);
+          while (parser.nextToken() != JsonToken.END_ARRAY) {
+            revisions.add(readRevision(parser));
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new Page(id, namespace, title, revisions);
+  }
+
+  private static Revision readRevision(final JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT);
+    long id = 0L;
+    long parentId = 0L;
+    String user = null;
+    Instant timestamp = null;
+    String comment = null;
+    String content = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "revid":
+          id = parser.getValueAsLong();
+          break;
+        case "parentid":
+          parentId = parser.getValueAsLong();
+          break;
+        case "user":
+          user = parser.getValueAsString();
+          break;
+        case "timestamp":
+          timestamp = readInstant(parser);
+          break;
+        case "comment":
+          comment = parser.getValueAsString();
+          break;
+        case "*":
+          content = parser.getValueAsString();
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new Revision(id, parentId, user, timestamp, comment, content);
+  }
+
+  /**
+   * MediaWiki timestamps are ISO-8601 instants such as "2019-07-21T12:34:56Z".
+   */
+  private static Instant readInstant(final JsonParser parser) throws IOException {
+    final String value = parser.getValueAsString();
+    return value == null || value.isEmpty() ? null : Instant.parse(value);
+  }
+
+  private static void expect(final JsonToken actual, final JsonToken expected) throws IOException {
+    if (actual != expected) {
+      throw new IOException("Expected " + expected + " but got " + actual);
+    }
+  }
+}
@@ -1,27 +1,34 @@
 package io.github.zeroone3010.mediawiki.recentchangesmonitor;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
-
 import java.time.Instant;
 import java.util.Objects;
 
 public class RecentChange {
   public enum ChangeType {
-    @JsonProperty("edit")
-    EDIT,
-
-    @JsonProperty("external")
-    EXTERNAL,
-
-    @JsonProperty("new")
-    NEW,
-
-    @JsonProperty("log")
-    LOG,
-
-    @JsonProperty("categorize")
-    CATEGORIZE;
+    EDIT("edit"),
+    EXTERNAL("external"),
+    NEW("new"),
+    LOG("log"),
+    CATEGORIZE("categorize");
+
+    private final String value;
+
+    ChangeType(final String value) {
+      this.value = value;
+    }
+
+    /**
+     * @param value The change type as it appears in the API response, e.g. "edit".
+     * @return The matching ChangeType.
+     */
+    public static ChangeType fromValue(final String value) {
+      for (final ChangeType type : values()) {
+        if (type.value.equals(value)) {
+          return type;
+        }
+      }
+      throw new IllegalArgumentException("Unknown change type: " + value);
+    }
   }
 
   private final Long recentChangeId;
@@ -43,23 +50,22 @@ public class RecentChange {
 //  private final boolean minor;
 //  private final boolean anon;
 
-  @JsonCreator
-  public RecentChange(@JsonProperty("rcid") long recentChangeId,
-                      @JsonProperty("type") ChangeType type,
-                      @JsonProperty("ns") int namespace,
-                      @JsonProperty("title") String title,
-                      @JsonProperty("pageid") long pageId,
-                      @JsonProperty("revid") long revisionId,
-                      @JsonProperty("old_revid") long oldRevisionId,
-                      @JsonProperty("user") String user,
-                      @JsonProperty("userid") long userId,
-                      @JsonProperty("oldlen") long oldLength,
-                      @JsonProperty("newlen") long newLength,
-                      @JsonProperty("timestamp") Instant timestamp,
-                      @JsonProperty("comment") String comment,
-                      @JsonProperty("logid") Long logId,
-                      @JsonProperty("logtype") String logType,
-                      @JsonProperty("logaction") String logAction
+  public RecentChange(long recentChangeId,
+                      ChangeType type,
+                      int namespace,
+                      String title,
+                      long pageId,
+                      long revisionId,
+                      long oldRevisionId,
+                      String user,
+                      long userId,
+                      long oldLength,
+                      long newLength,
+                      Instant timestamp,
+                      String comment,
+                      Long logId,
+                      String logType,
+                      String logAction
   ) {
     this.recentChangeId = recentChangeId;
     this.type = type;
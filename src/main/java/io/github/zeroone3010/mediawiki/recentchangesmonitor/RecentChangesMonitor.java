@@ -1,14 +1,9 @@
 package io.github.zeroone3010.mediawiki.recentchangesmonitor;
 
-import com.github.difflib.DiffUtils;
-import com.github.difflib.algorithm.jgit.HistogramDiff;
-import com.github.difflib.patch.AbstractDelta;
-import com.github.difflib.patch.DeltaType;
-import com.github.difflib.patch.Patch;
-
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -33,6 +28,11 @@ import static java.nio.file.StandardOpenOption.WRITE;
  */
 public class RecentChangesMonitor {
   private static final String USER_SPACE_PREFIX = "User:";
+
+  /**
+   * Node ids are used as file names in the shared directory, so only plain names are accepted.
+   */
+  private static final String NODE_ID_PATTERN = "[A-Za-z0-9_-]+";
   private final MediaWiki mediaWiki;
 
   /**
@@ -102,12 +102,7 @@ public class RecentChangesMonitor {
               final List<Revision> revisions = mediaWiki.fetchRevisions(edit);
               final Revision oldRevision = revisions.get(0);
               final Revision newRevision = revisions.get(1);
-
-              final Patch<String> patch = DiffUtils.diff(
-                  getContentAsList(oldRevision),
-                  getContentAsList(newRevision),
-                  new HistogramDiff<>());
-              patch.getDeltas().forEach(delta -> result.append("\t\t").append(format(delta)).append("\n"));
+              RevisionDiff.appendDeltas(oldRevision, newRevision, result);
             } catch (final Exception e) {
               throw new RuntimeException(e);
             }
@@ -131,28 +126,20 @@ public class RecentChangesMonitor {
     return String.format(" (%s: %s)", edit.getLogType(), edit.getLogAction());
   }
 
-  private static String format(final AbstractDelta<String> delta) {
-    if (delta.getType() == DeltaType.CHANGE) {
-      return String.format("[ChangeDelta, lines:\n\t\t\t%s\n\t\t\t%s", delta.getSource(), delta.getTarget());
-    }
-    return delta.toString();
-  }
-
-  private List<String> getContentAsList(final Revision revision) {
-    return Arrays.asList(revision.getContent().split("\n"));
-  }
-
-  private static long findLatestStoredRcId(final String wikiName) {
-    return findStoredWikiValue(wikiName, "_rcId");
-  }
-
-  private static long findLatestStoredLogId(final String wikiName) {
-    return findStoredWikiValue(wikiName, "_logId");
+  /**
+   * @param wikiName The host name of the wiki.
+   * @return The checkpoint stored in the working directory by earlier runs in single-wiki mode, or
+   * {@link Checkpoint#NONE} if there is none.
+   */
+  static Checkpoint findStoredCheckpoint(final String wikiName) {
+    return new Checkpoint(findStoredWikiValue(wikiName, "_rcId"), findStoredWikiValue(wikiName, "_logId"));
   }
 
   private static long findStoredWikiValue(final String wikiName, final String suffix) {
     try {
       return Long.valueOf(Files.readAllLines(Paths.get(wikiName + suffix)).get(0));
+    } catch (final NoSuchFileException e) {
+      return -1;
     } catch (final Exception e) {
       System.err.println(e);
       return -1;
@@ -182,7 +169,7 @@ public class RecentChangesMonitor {
         .max();
   }
 
-  private static String getWikiHostName(final String apiUrl) {
+  static String getWikiHostName(final String apiUrl) {
     try {
       return new URL(apiUrl).getHost();
     } catch (final MalformedURLException e) {
@@ -190,34 +177,62 @@ public class RecentChangesMonitor {
     }
   }
 
-  public static void main(final String... args) {
-    if (args == null || args.length != 1) {
-      throw new IllegalArgumentException("Give the URL of the api.php as the sole argument to this program.");
-    }
-    final String apiUrl = args[0];
-    final RecentChangesMonitor patrol = new RecentChangesMonitor(apiUrl);
-    final Map<String, List<RecentChange>> changesByNewUsers = patrol.findEditsByNewAndAnonymousUsers();
-
-    final String wikiHostName = getWikiHostName(apiUrl);
-    final long lastSeenRecentChangeId = findLatestStoredRcId(wikiHostName);
-    final long lastSeenLogId = findLatestStoredLogId(wikiHostName);
+  /**
+   * Polls the wiki once and formats the edits by new and anonymous users that are newer than the given checkpoint.
+   *
+   * @param lastSeen The checkpoint stored after the previous poll.
+   * @return The fetched changes, the report of unseen edits and the checkpoint to store after reporting them.
+   */
+  Poll poll(final Checkpoint lastSeen) {
+    final List<RecentChange> recentChanges = mediaWiki.fetchRecentChanges();
+    final Map<String, List<RecentChange>> changesByNewUsers = findChangesByNewAndAnonymousUsers(recentChanges);
 
     final Map<String, List<RecentChange>> filteredChangesByNewUsers = new HashMap<>();
     changesByNewUsers.forEach((user, edits) -> {
       final long maxRcId = findMaxValue(edits.stream(), RecentChange::getRecentChangeId).orElse(-1L);
       final long maxLogId = findMaxValue(edits.stream(), RecentChange::getLogId).orElse(-1L);
-      if (maxRcId > lastSeenRecentChangeId || maxLogId > lastSeenLogId) {
+      if (maxRcId > lastSeen.getRecentChangeId() || maxLogId > lastSeen.getLogId()) {
         filteredChangesByNewUsers.put(user, edits);
       }
     });
-    final String formattedEdits = patrol.formatChangesPerUser(filteredChangesByNewUsers);
-
-    System.out.println(formattedEdits);
+    final String formattedEdits = formatChangesPerUser(filteredChangesByNewUsers);
 
     final long maxRecentChangeId = findMaxValue(changesByNewUsers, RecentChange::getRecentChangeId).orElse(-1L);
     final long maxLogId = findMaxValue(changesByNewUsers, RecentChange::getLogId).orElse(-1L);
 
-    storeWikiValue(wikiHostName, "_rcId", maxRecentChangeId);
-    storeWikiValue(wikiHostName, "_logId", maxLogId);
+    return new Poll(recentChanges, formattedEdits, new Checkpoint(maxRecentChangeId, maxLogId));
+  }
+
+  /**
+   * Either monitors a single wiki, storing its checkpoint in the working directory, or, when the first argument
+   * is {@code --cluster}, takes part in monitoring a set of wikis shared by several nodes; see {@link ClusterMonitor}.
+   */
+  public static void main(final String... args) {
+    if (args != null && args.length > 0 && "--cluster".equals(args[0])) {
+      if (args.length < 4) {
+        throw new IllegalArgumentException("Usage: --cluster <shared directory> <node id> <api.php URL>...");
+      }
+      if (!args[2].matches(NODE_ID_PATTERN)) {
+        throw new IllegalArgumentException("The node id may only contain letters, digits, underscores and hyphens, "
+            + "but was " + args[2]);
+      }
+      final DirectoryLeaseStore leaseStore = new DirectoryLeaseStore(Paths.get(args[1]));
+      final List<String> apiUrls = Arrays.asList(args).subList(3, args.length);
+      new ClusterMonitor(leaseStore, args[2], apiUrls).runOnce();
+      return;
+    }
+    if (args == null || args.length != 1) {
+      throw new IllegalArgumentException("Give the URL of the api.php as the sole argument to this program.");
+    }
+    final String apiUrl = args[0];
+    final RecentChangesMonitor patrol = new RecentChangesMonitor(apiUrl);
+
+    final String wikiHostName = getWikiHostName(apiUrl);
+    final Poll poll = patrol.poll(findStoredCheckpoint(wikiHostName));
+
+    System.out.println(poll.getReport());
+
+    storeWikiValue(wikiHostName, "_rcId", poll.getCheckpoint().getRecentChangeId());
+    storeWikiValue(wikiHostName, "_logId", poll.getCheckpoint().getLogId());
   }
 }
@@ -1,8 +1,5 @@
 package io.github.zeroone3010.mediawiki.recentchangesmonitor;
 
-import com.fasterxml.jackson.annotation.JsonCreator;
-import com.fasterxml.jackson.annotation.JsonProperty;
-
 import java.time.Instant;
 import java.util.Objects;
 
@@ -14,13 +11,12 @@ public class Revision {
   private final String comment;
   private final String content;
 
-  @JsonCreator
-  public Revision(@JsonProperty("revid") long id,
-                  @JsonProperty("parentid") long parentId,
-                  @JsonProperty("user") String user,
-                  @JsonProperty("timestramp") Instant timestamp,
-                  @JsonProperty("comment") String comment,
-                  @JsonProperty("*") String content) {
+  public Revision(long id,
+                  long parentId,
+                  String user,
+                  Instant timestamp,
+                  String comment,
+                  String content) {
     this.id = id;
     this.parentId = parentId;
     this.user = user;
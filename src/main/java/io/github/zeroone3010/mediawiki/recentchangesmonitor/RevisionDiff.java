@@ -0,0 +1,46 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.algorithm.DiffException;
+import com.github.difflib.algorithm.jgit.HistogramDiff;
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.DeltaType;
+import com.github.difflib.patch.Patch;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Formats the line-based differences between two revisions of an article. Kept apart from
+ * {@link RecentChangesMonitor} so that the diff library is only loaded when there is something to diff.
+ */
+class RevisionDiff {
+
+  private RevisionDiff() {
+  }
+
+  /**
+   * @param oldRevision The older version of the article.
+   * @param newRevision The newer version of the article.
+   * @param result      The buffer to which one line per changed block is appended.
+   */
+  static void appendDeltas(final Revision oldRevision, final Revision newRevision, final StringBuffer result)
+      throws DiffException {
+    final Patch<String> patch = DiffUtils.diff(
+        getContentAsList(oldRevision),
+        getContentAsList(newRevision),
+        new HistogramDiff<>());
+    patch.getDeltas().forEach(delta -> result.append("\t\t").append(format(delta)).append("\n"));
+  }
+
+  private static String format(final AbstractDelta<String> delta) {
+    if (delta.getType() == DeltaType.CHANGE) {
+      return String.format("[ChangeDelta, lines:\n\t\t\t%s\n\t\t\t%s", delta.getSource(), delta.getTarget());
+    }
+    return delta.toString();
+  }
+
+  private static List<String> getContentAsList(final Revision revision) {
+    return Arrays.asList(revision.getContent().split("\n"));
+  }
+}
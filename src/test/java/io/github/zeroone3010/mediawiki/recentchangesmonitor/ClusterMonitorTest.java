@@ -0,0 +1,159 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterMonitorTest {
+  private static final String API_URL = "https://wiki.example.org/w/api.php";
+  private static final long LEASE_DURATION_MILLIS = 300L;
+  private static final long REPORT_MARGIN_MILLIS = 50L;
+  private static final long TAKEOVER_GRACE_MILLIS = 100L;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private DirectoryLeaseStore leaseStore;
+  private final List<String> reports = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    leaseStore = new DirectoryLeaseStore(folder.getRoot().toPath());
+  }
+
+  /**
+   * A stub that "finds" one new edit per poll and reports which node polled from which checkpoint.
+   */
+  private ClusterMonitor monitor(final String node, final String... apiUrls) {
+    return new ClusterMonitor(leaseStore, node, apiUrls.length == 0 ? Collections.singletonList(API_URL)
+        : Arrays.asList(apiUrls), LEASE_DURATION_MILLIS, REPORT_MARGIN_MILLIS, TAKEOVER_GRACE_MILLIS,
+        (apiUrl, lastSeen) -> new Poll(Collections.emptyList(),
+            node + " from " + lastSeen.getRecentChangeId(),
+            new Checkpoint(lastSeen.getRecentChangeId() + 1, lastSeen.getLogId())),
+        reports::add);
+  }
+
+  @Test
+  public void checkpointMovesWithTheLeaseOnFailover() throws Exception {
+    final ClusterMonitor a = monitor("a");
+    final ClusterMonitor b = monitor("b");
+
+    a.runOnce();
+    b.runOnce();
+    a.runOnce();
+    assertEquals(Arrays.asList("a from -1", "a from 0"), reports);
+
+    // Node a dies; b takes over once the grace period after the expiry of the lease has passed and a no longer
+    // counts as live.
+    Thread.sleep(2 * LEASE_DURATION_MILLIS + TAKEOVER_GRACE_MILLIS + 100L);
+    b.runOnce();
+    assertEquals(Arrays.asList("a from -1", "a from 0", "b from 1"), reports);
+    assertEquals("b", leaseStore.read("wiki.example.org").get().getOwner());
+    assertEquals(new Checkpoint(2L, -1L), leaseStore.read("wiki.example.org").get().getCheckpoint());
+
+    // When node a comes back, it does not report the wiki that b now holds.
+    a.runOnce();
+    b.runOnce();
+    assertEquals(Arrays.asList("a from -1", "a from 0", "b from 1", "b from 2"), reports);
+  }
+
+  @Test
+  public void freeWikisSpreadOutInTheFirstRound() {
+    final String[] apiUrls = {"https://a.example.org/w/api.php", "https://b.example.org/w/api.php"};
+    leaseStore.heartbeat("b", System.currentTimeMillis());
+
+    monitor("a", apiUrls).runOnce();
+    monitor("b", apiUrls).runOnce();
+
+    assertEquals(Arrays.asList("a from -1", "b from -1"), reports);
+    assertEquals("a", leaseStore.read("a.example.org").get().getOwner());
+    assertEquals("b", leaseStore.read("b.example.org").get().getOwner());
+  }
+
+  @Test
+  public void busierNodeReleasesAWikiToTheQuieterOne() {
+    final String[] apiUrls = {"https://one.example.org/w/api.php", "https://two.example.org/w/api.php",
+        "https://three.example.org/w/api.php"};
+    final long now = System.currentTimeMillis();
+    assertTrue(leaseStore.replace(null, heldLease("one.example.org", "a", 10L, 10.0, now)));
+    assertTrue(leaseStore.replace(null, heldLease("two.example.org", "a", 20L, 5.0, now)));
+    assertTrue(leaseStore.replace(null, heldLease("three.example.org", "b", 30L, 0.0, now)));
+    leaseStore.heartbeat("b", now);
+
+    // Node a carries a load of 11 + 6 against 1 of node b, so it gives away the wiki that fits the excess.
+    monitor("a", apiUrls).runOnce();
+    assertEquals(Collections.singletonList("a from 10"), reports);
+    assertTrue(leaseStore.read("two.example.org").get().isExpired(System.currentTimeMillis()));
+
+    monitor("b", apiUrls).runOnce();
+    assertEquals(Arrays.asList("a from 10", "b from 20", "b from 30"), reports);
+    assertEquals("b", leaseStore.read("two.example.org").get().getOwner());
+  }
+
+  private static Lease heldLease(final String wiki, final String owner, final long recentChangeId,
+                                 final double editsPerMinute, final long now) {
+    return new Lease(wiki, 1L, owner, now + LEASE_DURATION_MILLIS, new Checkpoint(recentChangeId, -1L), now,
+        recentChangeId, editsPerMinute);
+  }
+
+  @Test
+  public void editRateFollowsTheRecentChangeIdsRatherThanTheFetchedChanges() throws Exception {
+    final Instant start = Instant.now().minusSeconds(10 * 60);
+    final Deque<List<RecentChange>> batches = new ArrayDeque<>();
+    // Ten edits over the past ten minutes, then a single change whose id shows that many more were made.
+    batches.add(LongStream.rangeClosed(1L, 10L)
+        .mapToObj(id -> change(id, start.plusSeconds((id - 1) * 60)))
+        .collect(Collectors.toList()));
+    batches.add(Collections.singletonList(change(1000L, Instant.now())));
+    final ClusterMonitor monitor = new ClusterMonitor(leaseStore, "a", Collections.singletonList(API_URL),
+        LEASE_DURATION_MILLIS, REPORT_MARGIN_MILLIS, TAKEOVER_GRACE_MILLIS,
+        (apiUrl, lastSeen) -> new Poll(batches.remove(), "", lastSeen), reports::add);
+
+    monitor.runOnce();
+    final double firstRate = leaseStore.read("wiki.example.org").get().getEditsPerMinute();
+    assertTrue("about one edit per minute, but was " + firstRate, firstRate > 0.9 && firstRate < 1.1);
+
+    Thread.sleep(100L);
+    monitor.runOnce();
+    final Lease lease = leaseStore.read("wiki.example.org").get();
+    assertEquals(1000L, lease.getLatestRecentChangeId());
+    assertTrue("990 edits in a fraction of a second, but was " + lease.getEditsPerMinute(),
+        lease.getEditsPerMinute() > 100_000.0);
+  }
+
+  private static RecentChange change(final long recentChangeId, final Instant timestamp) {
+    return new RecentChange(recentChangeId, RecentChange.ChangeType.EDIT, 0, "Page", 1L, recentChangeId,
+        recentChangeId - 1, "User", 1L, 0L, 0L, timestamp, "", null, null, null);
+  }
+
+  @Test
+  public void overlappingRunsOfANodeAreSkipped() throws Exception {
+    try (final FileChannel lock = leaseStore.tryLockNode("a")) {
+      monitor("a").runOnce();
+    }
+    assertEquals(Collections.emptyList(), reports);
+    monitor("a").runOnce();
+    assertEquals(Collections.singletonList("a from -1"), reports);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void wikisOnTheSameHostAreRejected() {
+    new ClusterMonitor(leaseStore, "a",
+        Arrays.asList("https://farm.example.org/en/api.php", "https://farm.example.org/fi/api.php"));
+  }
+}
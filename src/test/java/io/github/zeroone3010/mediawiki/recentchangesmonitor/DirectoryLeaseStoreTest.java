@@ -0,0 +1,155 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryLeaseStoreTest {
+  private static final String WIKI = "wiki.example.org";
+  private static final int THREADS = 16;
+  private static final int ATTEMPTS_PER_THREAD = 200;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void racingReplacementsWinOncePerGeneration() throws Exception {
+    final DirectoryLeaseStore store = new DirectoryLeaseStore(folder.getRoot().toPath());
+    final Map<Long, String> winners = new ConcurrentHashMap<>();
+    final List<String> duplicates = new ArrayList<>();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      final String node = "node" + i;
+      futures.add(executor.submit(() -> {
+        for (int attempt = 0; attempt < ATTEMPTS_PER_THREAD; attempt++) {
+          final Lease current = store.read(WIKI).orElse(null);
+          final Lease next = current == null ? Lease.first(WIKI, node, 0L) : current.renew(node, 0L);
+          if (store.replace(current, next)) {
+            final String previous = winners.put(next.getGeneration(), node);
+            if (previous != null) {
+              synchronized (duplicates) {
+                duplicates.add(next.getGeneration() + " won by " + previous + " and " + node);
+              }
+            }
+          }
+        }
+      }));
+    }
+    for (final Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    final long generation = store.read(WIKI).get().getGeneration();
+    assertEquals(new ArrayList<String>(), duplicates);
+    assertEquals(generation, winners.size());
+    assertEquals(winners.get(generation), store.read(WIKI).get().getOwner());
+  }
+
+  @Test
+  public void outdatedCopyCannotWinAfterCleanup() throws Exception {
+    final DirectoryLeaseStore store = new DirectoryLeaseStore(folder.getRoot().toPath(), 0L);
+    Lease current = Lease.first(WIKI, "a", 0L);
+    assertTrue(store.replace(null, current));
+    final Lease outdated = current;
+    for (int i = 0; i < 30; i++) {
+      final Lease next = current.renew("a", 0L);
+      assertTrue(store.replace(current, next));
+      current = next;
+    }
+
+    assertFalse(store.replace(outdated, outdated.renew("b", 0L)));
+    assertFalse(store.replace(null, Lease.first(WIKI, "b", 0L)));
+    assertEquals(current, store.read(WIKI).get());
+    try (final Stream<?> files = Files.list(folder.getRoot().toPath())) {
+      assertEquals("ten kept generations and the nodes directory", 11, files.count());
+    }
+  }
+
+  @Test
+  public void replacementStalledUntilItsBaseIsCleanedUpLoses() {
+    final Lease base = advance(new DirectoryLeaseStore(folder.getRoot().toPath()), null, 5);
+    final DirectoryLeaseStore stalled = stallingStore(base);
+
+    assertFalse(stalled.replace(base, base.renew("b", 0L)));
+    assertEquals(base.getGeneration() + 12, stalled.read(WIKI).get().getGeneration());
+    assertEquals("a", stalled.read(WIKI).get().getOwner());
+    assertFalse("the recreated generation is deleted",
+        Files.exists(folder.getRoot().toPath().resolve(WIKI + ".lease." + (base.getGeneration() + 1))));
+  }
+
+  @Test
+  public void firstGenerationStalledUntilItIsCleanedUpLoses() {
+    final DirectoryLeaseStore stalled = stallingStore(null);
+
+    assertFalse(stalled.replace(null, Lease.first(WIKI, "b", 0L)));
+    assertEquals(12L, stalled.read(WIKI).get().getGeneration());
+    assertEquals("a", stalled.read(WIKI).get().getOwner());
+    assertFalse("the recreated generation is deleted",
+        Files.exists(folder.getRoot().toPath().resolve(WIKI + ".lease.1")));
+  }
+
+  /**
+   * @return A store that, right before linking its next generation, lets another node advance the lease from the
+   * given base so far that the base and the next generation get cleaned up, leaving the name of the next one free.
+   */
+  private DirectoryLeaseStore stallingStore(final Lease base) {
+    final DirectoryLeaseStore other = new DirectoryLeaseStore(folder.getRoot().toPath(), 0L);
+    return new DirectoryLeaseStore(folder.getRoot().toPath()) {
+      private boolean stalled;
+
+      @Override
+      void link(final Path target, final Path temporary) throws IOException {
+        if (!stalled) {
+          stalled = true;
+          advance(other, base, 12);
+          assertFalse(Files.exists(target));
+        }
+        super.link(target, temporary);
+      }
+    };
+  }
+
+  private static Lease advance(final DirectoryLeaseStore store, final Lease base, final int generations) {
+    Lease current = base;
+    for (int i = 0; i < generations; i++) {
+      final Lease next = current == null ? Lease.first(WIKI, "a", 0L) : current.renew("a", 0L);
+      assertTrue(store.replace(current, next));
+      current = next;
+    }
+    return current;
+  }
+
+  @Test
+  public void leaseIsReadBackAsWritten() {
+    final DirectoryLeaseStore store = new DirectoryLeaseStore(folder.getRoot().toPath());
+    assertFalse(store.read(WIKI).isPresent());
+
+    final Lease first = Lease.first(WIKI, "a", 1000L);
+    final Lease polled = first.polled(new Checkpoint(12L, 34L), 500L, 56L, 7.5);
+    assertTrue(store.replace(null, first));
+    assertTrue(store.replace(first, polled));
+
+    assertEquals(polled, store.read(WIKI).get());
+    assertNull(store.read("other.example.org").orElse(null));
+  }
+}
@@ -0,0 +1,49 @@
+package io.github.zeroone3010.mediawiki.recentchangesmonitor;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Reads saved responses of the MediaWiki query API, including the parts the reader has to skip.
+ */
+public class QueryResponseReaderTest {
+  private final QueryResponseReader reader = new QueryResponseReader();
+
+  @Test
+  public void recentChangesAreReadPastContinueAndLogParameters() throws Exception {
+    final QueryResponse response = reader.read(getClass().getResource("recentchanges.json"));
+
+    final List<RecentChange> recentChanges = response.getQuery().getRecentChanges();
+    assertNull(response.getQuery().getPages());
+    assertEquals(Arrays.asList(
+        new RecentChange(1240L, RecentChange.ChangeType.EDIT, 0, "Example page", 42L, 1001L, 1000L, "192.0.2.1",
+            0L, 120L, 135L, Instant.parse("2019-07-21T12:34:56Z"), "Fixed a typo", null, null, null),
+        new RecentChange(1239L, RecentChange.ChangeType.LOG, 2, "User:Newcomer", 0L, 0L, 0L, "Newcomer", 77L,
+            0L, 0L, Instant.parse("2019-07-21T12:30:00Z"), "", 555L, "newusers", "create"),
+        new RecentChange(1238L, RecentChange.ChangeType.NEW, 0, "Hidden page", 43L, 999L, 0L, null, 0L, 0L, 50L,
+            Instant.parse("2019-07-21T12:00:00Z"), null, null, null, null)),
+        recentChanges);
+  }
+
+  @Test
+  public void revisionsAreReadWithTheirTimestampsAndMissingPagesAreKept() throws Exception {
+    final QueryResponse response = reader.read(getClass().getResource("revisions.json"));
+
+    final Map<Long, Page> pages = response.getQuery().getPages();
+    assertNull(response.getQuery().getRecentChanges());
+    assertEquals(2, pages.size());
+    assertEquals(new Page(42L, 0, "Example page", Arrays.asList(
+        new Revision(1000L, 990L, "Regular", Instant.parse("2019-07-20T08:00:00Z"), "Created", "Helo world"),
+        new Revision(1001L, 1000L, "192.0.2.1", Instant.parse("2019-07-21T12:34:56Z"), "Fixed a typo",
+            "Hello world"))),
+        pages.get(42L));
+    assertEquals(new Page(0L, 0, "Deleted page", null), pages.get(-1L));
+  }
+}